@@ -2,16 +2,21 @@ package com.exmaple.htmlbuilderdemo;
 
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
-import android.util.Log;
 import android.webkit.WebChromeClient;
+import android.webkit.WebResourceResponse;
 import android.webkit.WebView;
 import android.webkit.WebViewClient;
 
 import com.prashant.java.htmlbuilder.HtmlBuilder;
 
+import java.nio.charset.Charset;
+
 public class MainActivity extends AppCompatActivity {
 
-    private static final String TAG = MainActivity.class.getSimpleName();
+    /**
+     * Url under which the page built by {@code htmlBuilder} is served to the {@link WebView}
+     */
+    private static final String PAGE_URL = "http://htmlbuilderdemo.local/";
     private WebView webView;
     private HtmlBuilder htmlBuilder;
 
@@ -21,7 +26,18 @@ public class MainActivity extends AppCompatActivity {
         setContentView(R.layout.activity_main);
         webView = (WebView) findViewById(R.id.webView);
 
-        webView.setWebViewClient(new WebViewClient());
+        webView.setWebViewClient(new WebViewClient() {
+            @SuppressWarnings("deprecation")
+            @Override
+            public WebResourceResponse shouldInterceptRequest(WebView view, String url) {
+                if (PAGE_URL.equals(url)) {
+                    // stream the page straight from the builder, without creating the html string
+                    return new WebResourceResponse("text/html", "UTF-8",
+                            htmlBuilder.asInputStream(Charset.forName("UTF-8")));
+                }
+                return super.shouldInterceptRequest(view, url);
+            }
+        });
         webView.setWebChromeClient(new WebChromeClient());
         webView.getSettings().setDomStorageEnabled(true);
         webView.getSettings().setJavaScriptEnabled(true);
@@ -75,8 +91,6 @@ public class MainActivity extends AppCompatActivity {
                 .addIcon("https://images-cdn.9gag.com/photo/azL60YN_460s.jpg")
                 .closeBody()
                 .closeHtml();
-        String htmlTableString = htmlBuilder.getHtml();
-        Log.d(TAG, "onCreate: " + htmlTableString);
-        webView.loadDataWithBaseURL(null, htmlTableString, "text/html", "charset=UTF-8", null);
+        webView.loadUrl(PAGE_URL);
     }
 }
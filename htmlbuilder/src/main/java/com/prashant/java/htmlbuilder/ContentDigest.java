@@ -0,0 +1,145 @@
+package com.prashant.java.htmlbuilder;
+
+/**
+ * Running 64-bit FNV-1a hash and UTF-8 byte length of the buffer of a {@link HtmlBuilder}.
+ * The digest follows the end of the buffer: {@link #update(CharSequence)} digests only the
+ * chars appended since the previous update, so every char is read once.
+ */
+final class ContentDigest {
+
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private int mOffset;
+    private long mHash = FNV_OFFSET_BASIS;
+    private long mUtf8Length;
+    private boolean mHighSurrogate;
+
+    /** State at the most recent mark, or {@code mMarkOffset == -1} if there is none. */
+    private int mMarkOffset = -1;
+    private long mMarkHash;
+    private long mMarkUtf8Length;
+    private boolean mMarkHighSurrogate;
+
+    /**
+     * Digests the chars of {@code chars} from the end of the previous update to its end. Starts
+     * over if {@code chars} has been shortened past the digested chars.
+     */
+    void update(CharSequence chars) {
+        int end = chars.length();
+        if (end < mOffset) {
+            reset();
+        }
+        long hash = mHash;
+        long utf8Length = mUtf8Length;
+        boolean highSurrogate = mHighSurrogate;
+        for (int i = mOffset; i < end; i++) {
+            char c = chars.charAt(i);
+            hash = (hash ^ c) * FNV_PRIME;
+            utf8Length += utf8Length(c, highSurrogate);
+            highSurrogate = Character.isHighSurrogate(c);
+        }
+        mOffset = end;
+        mHash = hash;
+        mUtf8Length = utf8Length;
+        mHighSurrogate = highSurrogate;
+    }
+
+    /**
+     * Digests {@code chars} up to its end and remembers the state, so that truncating back to
+     * this point does not need to digest the chars before it again.
+     */
+    void mark(CharSequence chars) {
+        update(chars);
+        mMarkOffset = mOffset;
+        mMarkHash = mHash;
+        mMarkUtf8Length = mUtf8Length;
+        mMarkHighSurrogate = mHighSurrogate;
+    }
+
+    /**
+     * Forgets the chars after {@code length}, which have been removed from the buffer.
+     */
+    void truncate(int length) {
+        if (length >= mOffset) {
+            return;
+        }
+        if (length == mMarkOffset) {
+            mOffset = mMarkOffset;
+            mHash = mMarkHash;
+            mUtf8Length = mMarkUtf8Length;
+            mHighSurrogate = mMarkHighSurrogate;
+        } else {
+            reset();
+        }
+    }
+
+    long getHash() {
+        return mHash;
+    }
+
+    long getUtf8Length() {
+        return mUtf8Length;
+    }
+
+    /**
+     * Continues {@code hash} with the chars of {@code chars}.
+     */
+    static long hash(long hash, CharSequence chars) {
+        for (int i = 0, n = chars.length(); i < n; i++) {
+            hash = (hash ^ chars.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Continues {@code hash} with {@code value}.
+     */
+    static long hash(long hash, int value) {
+        return (hash ^ value) * FNV_PRIME;
+    }
+
+    /**
+     * Returns the number of bytes of {@code chars} encoded in UTF-8, when they follow a high
+     * surrogate if {@code highSurrogate} is true.
+     */
+    static long utf8Length(CharSequence chars, boolean highSurrogate) {
+        long utf8Length = 0;
+        for (int i = 0, n = chars.length(); i < n; i++) {
+            char c = chars.charAt(i);
+            utf8Length += utf8Length(c, highSurrogate);
+            highSurrogate = Character.isHighSurrogate(c);
+        }
+        return utf8Length;
+    }
+
+    /**
+     * Returns the number of bytes {@code c} adds to the UTF-8 encoding, when it follows a high
+     * surrogate if {@code highSurrogate} is true. A high surrogate counts as 1 byte and the
+     * low surrogate completing the pair as 3, so that a pair takes 4 bytes and a lone
+     * surrogate is counted as the '?' it is encoded to.
+     */
+    static int utf8Length(char c, boolean highSurrogate) {
+        if (c < 0x80) {
+            return 1;
+        } else if (c < 0x800) {
+            return 2;
+        } else if (Character.isLowSurrogate(c)) {
+            return highSurrogate ? 3 : 1;
+        } else if (Character.isHighSurrogate(c)) {
+            return 1;
+        }
+        return 3;
+    }
+
+    /**
+     * Forgets all digested chars, so that the next update digests the buffer from the start.
+     */
+    void reset() {
+        mOffset = 0;
+        mHash = FNV_OFFSET_BASIS;
+        mUtf8Length = 0;
+        mHighSurrogate = false;
+        mMarkOffset = -1;
+    }
+}
@@ -1,6 +1,13 @@
 package com.prashant.java.htmlbuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * @author Prashant Singh
@@ -15,9 +22,31 @@ public class HtmlBuilder {
     private static final String AMP_ENTITY = "&amp;";                         //$NON-NLS-1$
     private final StringBuilder mStringBuilder;
     private String mTableDataExtra;
+    /**
+     * Offsets into {@code mStringBuilder} at which the placeholders are resolved, in the order
+     * of {@code mPlaceholderNames}. Both arrays only grow at the end, so offsets are sorted.
+     */
+    private int[] mPlaceholderOffsets;
+    private String[] mPlaceholderNames;
+    private int mPlaceholderCount;
+    private Map<String, CharSequence> mPlaceholderValues;
+    /**
+     * Stack of the marks which can still be rolled back to, oldest first: their ids, and the
+     * buffer length, placeholder count and table tdExtra when they were taken.
+     */
+    private int[] mMarkIds;
+    private int[] mMarkLengths;
+    private int[] mMarkPlaceholderCounts;
+    private String[] mMarkTableDataExtras;
+    private int mMarkCount;
+    private int mLastMarkId;
+    private ContentDigest mContentDigest;
 
     /**
-     * Initialize the object with a non-null instance of {@link StringBuilder}
+     * Initialize the object with a non-null instance of {@link StringBuilder}. The caller keeps
+     * a reference to it, so editing it in place has the same effect as editing the result of
+     * {@link #getStringBuilder()}, except that the content digest is not reset: call
+     * {@link #getStringBuilder()} after such edits if {@link #enableContentDigest()} is used.
      *
      * @param stringBuilder non-null instance of {@link StringBuilder}
      */
@@ -66,6 +95,9 @@ public class HtmlBuilder {
      */
     public HtmlBuilder closeHtml() {
         addHtml("</html>");
+        if (mContentDigest != null) {
+            mContentDigest.update(mStringBuilder);
+        }
         return this;
     }
 
@@ -83,10 +115,31 @@ public class HtmlBuilder {
      * @param html {@link String} instance, expected to be a valid html string
      */
     public HtmlBuilder addHtml(String html) {
+        return addHtml((CharSequence) html);
+    }
+
+    /**
+     * Adds the supplied {@link CharSequence} as is.
+     *
+     * @param html {@link CharSequence} instance, expected to be a valid html string
+     */
+    public HtmlBuilder addHtml(CharSequence html) {
         mStringBuilder.append(html);
         return this;
     }
 
+    /**
+     * Adds the supplied slice of {@code html} as is.
+     *
+     * @param html   array holding the html, expected to be a valid html string
+     * @param offset index of the first char to be added
+     * @param length number of chars to be added
+     */
+    public HtmlBuilder addHtml(char[] html, int offset, int length) {
+        mStringBuilder.append(html, offset, length);
+        return this;
+    }
+
     /**
      * Adds the HTML non-breaking space "&amp;nbsp;"
      */
@@ -127,88 +180,318 @@ public class HtmlBuilder {
     }
 
     /**
-     * Adds the html "&lt;A/&gt;" to the {@code text} and links it with "href" as {@code url}
+     * Same as {@link #addLink(CharSequence, CharSequence)}.
+     *
+     * @param text The string that needs to be added to the "&lt;A/&gt;" tag
+     * @param url  The "href" value for this anchor tag
+     */
+    public HtmlBuilder addLink(String text, String url) {
+        return addLink((CharSequence) text, url);
+    }
+
+    /**
+     * Adds the html "&lt;A/&gt;" to the {@code text} and links it with "href" as {@code url}.
+     * Leading and trailing whitespace of {@code text} is kept outside of the anchor.
      * <p>
      * Example : addLink("Google", "www.google.com")
      *
      * @param text The string that needs to be added to the "&lt;A/&gt;" tag
      * @param url  The "href" value for this anchor tag
      */
-    public HtmlBuilder addLink(String text, String url) {
-        int begin = 0;
-        int length = text.length();
-        for (; begin < length; begin++) {
-            char c = text.charAt(begin);
-            if (Character.isWhitespace(c)) {
-                mStringBuilder.append(c);
-            } else {
-                break;
-            }
-        }
-        mStringBuilder.append("<A HREF=\"");
-        mStringBuilder.append(url);
-        mStringBuilder.append("\">");
-        // FIXME: 18/10/17
-        appendXmlTextValue(mStringBuilder, text.trim());
-        mStringBuilder.append("</A>");
-        int end = length - 1;
-        for (; end > begin; end--) {
-            char c = text.charAt(begin);
-            if (Character.isWhitespace(c)) {
-                mStringBuilder.append(c);
-            }
-        }
+    public HtmlBuilder addLink(CharSequence text, CharSequence url) {
+        appendAnchor(" HREF=\"", url, text, 0, text.length());
         return this;
     }
 
+    /**
+     * Same as {@link #addLink(CharSequence, CharSequence)} for a slice of {@code text}.
+     *
+     * @param text   array holding the string that needs to be added to the "&lt;A/&gt;" tag
+     * @param offset index of the first char of the text
+     * @param length number of chars of the text
+     * @param url    The "href" value for this anchor tag
+     */
+    public HtmlBuilder addLink(char[] text, int offset, int length, CharSequence url) {
+        checkRange(text, offset, length);
+        appendAnchor(" HREF=\"", url, text, offset, offset + length);
+        return this;
+    }
+
+    /**
+     * Same as {@link #addOnClick(CharSequence, CharSequence)}.
+     *
+     * @param text   The string to be added.
+     * @param method The method to be executed on click of the {@code text}
+     */
+    public HtmlBuilder addOnClick(String text, String method) {
+        return addOnClick((CharSequence) text, method);
+    }
+
     /**
      * Adds the text {@code text} and assigns the {@code method} to the onclick of the text.
+     * Leading and trailing whitespace of {@code text} is kept outside of the anchor.
      * <p>
      * Example : addOnClick("Click me", "alert('I am alert');")
      *
      * @param text   The string to be added.
      * @param method The method to be executed on click of the {@code text}
      */
-    public HtmlBuilder addOnClick(String text, String method) {
-        int begin = 0;
-        int length = text.length();
-        for (; begin < length; begin++) {
-            char c = text.charAt(begin);
-            if (Character.isWhitespace(c)) {
-                mStringBuilder.append(c);
-            } else {
-                break;
-            }
-        }
-        mStringBuilder.append("<A onclick=\"");
-        mStringBuilder.append(method);
-        mStringBuilder.append("\">");
-        // FIXME: 18/10/17
-        appendXmlTextValue(mStringBuilder, text.trim());
-        mStringBuilder.append("</A>");
-        int end = length - 1;
-        for (; end > begin; end--) {
-            char c = text.charAt(begin);
-            if (Character.isWhitespace(c)) {
-                mStringBuilder.append(c);
-            }
-        }
+    public HtmlBuilder addOnClick(CharSequence text, CharSequence method) {
+        appendAnchor(" onclick=\"", method, text, 0, text.length());
+        return this;
+    }
+
+    /**
+     * Same as {@link #addOnClick(CharSequence, CharSequence)} for a slice of {@code text}.
+     *
+     * @param text   array holding the string to be added
+     * @param offset index of the first char of the text
+     * @param length number of chars of the text
+     * @param method The method to be executed on click of the {@code text}
+     */
+    public HtmlBuilder addOnClick(char[] text, int offset, int length, CharSequence method) {
+        checkRange(text, offset, length);
+        appendAnchor(" onclick=\"", method, text, offset, offset + length);
         return this;
     }
 
+    /**
+     * Adds the {@code text} escaped as a DOM text node, through
+     * {@link #appendXmlTextValue(StringBuilder, String)}.
+     *
+     * @param text The text to be added
+     */
     public HtmlBuilder add(String text) {
-        //// FIXME: 18/10/17
         appendXmlTextValue(mStringBuilder, text);
         return this;
     }
 
     /**
-     * Returns the html string representation as per the tags added before
+     * Adds the {@code text} escaped as a DOM text node.
+     *
+     * @param text The text to be added
+     */
+    public HtmlBuilder add(CharSequence text) {
+        appendXmlTextValue(mStringBuilder, text, 0, text.length());
+        return this;
+    }
+
+    /**
+     * Adds a slice of {@code text} escaped as a DOM text node.
+     *
+     * @param text   array holding the text to be added
+     * @param offset index of the first char to be added
+     * @param length number of chars to be added
+     */
+    public HtmlBuilder add(char[] text, int offset, int length) {
+        checkRange(text, offset, length);
+        appendXmlTextValue(mStringBuilder, text, offset, offset + length);
+        return this;
+    }
+
+    /**
+     * Returns the html string representation as per the tags added before, with every
+     * placeholder replaced by its filled value.
      *
      * @return html string form the data added before calling this
      */
     public String getHtml() {
-        return mStringBuilder.toString();
+        int placeholderCount = getPlaceholderCount();
+        if (placeholderCount == 0) {
+            return mStringBuilder.toString();
+        }
+        int length = mStringBuilder.length();
+        for (int i = 0; i < placeholderCount; i++) {
+            length += getPlaceholderValue(i).length();
+        }
+        StringBuilder html = new StringBuilder(length);
+        try {
+            writeTo(html);
+        } catch (IOException e) {
+            // StringBuilder never throws
+            throw new AssertionError(e);
+        }
+        return html.toString();
+    }
+
+    /**
+     * Writes the html to {@code out}, same as {@link #getHtml()}, but without creating the
+     * html string first.
+     *
+     * @param out the destination for the html
+     * @throws IOException if {@code out} fails to append
+     */
+    public void writeTo(Appendable out) throws IOException {
+        int start = 0;
+        for (int i = 0, n = getPlaceholderCount(); i < n; i++) {
+            int offset = mPlaceholderOffsets[i];
+            out.append(mStringBuilder, start, offset);
+            CharSequence value = getPlaceholderValue(i);
+            out.append(value, 0, value.length());
+            start = offset;
+        }
+        out.append(mStringBuilder, start, mStringBuilder.length());
+    }
+
+    /**
+     * Returns a {@link Reader} over the html, same as {@link #getHtml()}, which reads straight
+     * from the content of this builder instead of creating the html string. The builder must
+     * not be modified until the reader has been read; reading while the document is still
+     * being built is not supported.
+     *
+     * @return a reader over the html
+     */
+    public Reader asReader() {
+        return new HtmlReader(this);
+    }
+
+    /**
+     * Returns an {@link InputStream} over the html encoded with {@code charset}, which encodes
+     * the content of this builder in small chunks as it is read instead of creating the html
+     * string and its bytes. Malformed and unmappable chars are replaced, as done by
+     * {@link String#getBytes(Charset)}. The builder must not be modified until the stream has
+     * been read; reading while the document is still being built is not supported.
+     * <p>
+     * Example : new WebResourceResponse("text/html", "UTF-8", asInputStream(utf8))
+     *
+     * @param charset the charset to encode the html with
+     * @return a stream over the encoded html
+     */
+    public InputStream asInputStream(Charset charset) {
+        return new HtmlInputStream(new HtmlReader(this), charset);
+    }
+
+    /**
+     * Adds a hole named {@code name} at the current position. The hole is resolved to the value
+     * given to {@link #fill(String, CharSequence)} only when the html is written out, so the
+     * value can be supplied after the rest of the document has been built, without shifting
+     * the content added so far. A name may be used for several holes, all of which receive the
+     * same value. Holes that are never filled are resolved to nothing.
+     * <p>
+     * Example : openHead().placeholder("title").closeHead() ... fill("title", "&lt;title&gt;...")
+     *
+     * @param name the name of the hole
+     */
+    public HtmlBuilder placeholder(String name) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        dropPlaceholdersPastEnd();
+        if (mPlaceholderNames == null) {
+            mPlaceholderOffsets = new int[4];
+            mPlaceholderNames = new String[4];
+        } else if (mPlaceholderCount == mPlaceholderNames.length) {
+            mPlaceholderOffsets = Arrays.copyOf(mPlaceholderOffsets, mPlaceholderCount * 2);
+            mPlaceholderNames = Arrays.copyOf(mPlaceholderNames, mPlaceholderCount * 2);
+        }
+        mPlaceholderOffsets[mPlaceholderCount] = mStringBuilder.length();
+        mPlaceholderNames[mPlaceholderCount] = name;
+        mPlaceholderCount++;
+        return this;
+    }
+
+    /**
+     * Sets the value of the holes named {@code name}. The {@code html} is added as is, like
+     * {@link #addHtml(CharSequence)}, and is read only when the html is written out, so a
+     * mutable {@link CharSequence} may still be changed until then. Filling a name again
+     * replaces the previous value.
+     *
+     * @param name the name of the hole, see {@link #placeholder(String)}
+     * @param html the value for the hole, expected to be a valid html string
+     */
+    public HtmlBuilder fill(String name, CharSequence html) {
+        if (name == null) {
+            throw new NullPointerException("name == null");
+        }
+        if (mPlaceholderValues == null) {
+            mPlaceholderValues = new HashMap<String, CharSequence>();
+        }
+        mPlaceholderValues.put(name, html);
+        return this;
+    }
+
+    /**
+     * Returns a mark of the current position, to be passed to {@link #rollbackTo(long)}. The
+     * mark is an opaque value and is only valid for this builder. Marks are nested: rolling
+     * back to or releasing a mark discards the marks taken after it. A mark is kept until it is
+     * released, so a mark which is no longer needed, typically because the content after it is
+     * kept, should be passed to {@link #release(long)}.
+     *
+     * @return the mark of the current position
+     */
+    public long mark() {
+        if (mContentDigest != null) {
+            mContentDigest.mark(mStringBuilder);
+        }
+        dropPlaceholdersPastEnd();
+        if (mMarkIds == null) {
+            mMarkIds = new int[4];
+            mMarkLengths = new int[4];
+            mMarkPlaceholderCounts = new int[4];
+            mMarkTableDataExtras = new String[4];
+        } else if (mMarkCount == mMarkIds.length) {
+            mMarkIds = Arrays.copyOf(mMarkIds, mMarkCount * 2);
+            mMarkLengths = Arrays.copyOf(mMarkLengths, mMarkCount * 2);
+            mMarkPlaceholderCounts = Arrays.copyOf(mMarkPlaceholderCounts, mMarkCount * 2);
+            mMarkTableDataExtras = Arrays.copyOf(mMarkTableDataExtras, mMarkCount * 2);
+        }
+        mLastMarkId++;
+        mMarkIds[mMarkCount] = mLastMarkId;
+        mMarkLengths[mMarkCount] = mStringBuilder.length();
+        mMarkPlaceholderCounts[mMarkCount] = mPlaceholderCount;
+        mMarkTableDataExtras[mMarkCount] = mTableDataExtra;
+        mMarkCount++;
+        return mLastMarkId;
+    }
+
+    /**
+     * Discards everything added after {@code mark} was taken, including placeholders and the
+     * marks taken after it, and restores the tdExtra of {@link #beginTable(String)}. Filled
+     * values are kept. This only truncates, so it does not depend on the size of the content
+     * added before the mark. The same mark may be rolled back to again.
+     *
+     * @param mark a mark returned by {@link #mark()}
+     * @throws IllegalArgumentException if the content has already been rolled back to before
+     *                                  the mark, or the buffer has been truncated before it
+     */
+    public HtmlBuilder rollbackTo(long mark) {
+        int index = indexOfMark(mark);
+        int length = mMarkLengths[index];
+        int placeholderCount = mMarkPlaceholderCounts[index];
+        mStringBuilder.setLength(length);
+        if (mContentDigest != null) {
+            mContentDigest.truncate(length);
+        }
+        for (int i = placeholderCount; i < mPlaceholderCount; i++) {
+            mPlaceholderNames[i] = null;
+        }
+        mPlaceholderCount = placeholderCount;
+        mTableDataExtra = mMarkTableDataExtras[index];
+        for (int i = index + 1; i < mMarkCount; i++) {
+            mMarkTableDataExtras[i] = null;
+        }
+        mMarkCount = index + 1;
+        return this;
+    }
+
+    /**
+     * Keeps everything added after {@code mark} was taken and forgets the mark, together with
+     * the marks taken after it. Releasing the most recent mark takes constant time, so keeping
+     * content costs nothing once its mark is released.
+     * <p>
+     * Example : long mark = mark(); ... if (empty) rollbackTo(mark); else release(mark);
+     *
+     * @param mark a mark returned by {@link #mark()}
+     * @throws IllegalArgumentException if the mark has already been released or rolled back
+     *                                  past, or the buffer has been truncated before it
+     */
+    public HtmlBuilder release(long mark) {
+        int index = indexOfMark(mark);
+        for (int i = index; i < mMarkCount; i++) {
+            mMarkTableDataExtras[i] = null;
+        }
+        mMarkCount = index;
+        return this;
     }
 
     /**
@@ -237,6 +520,27 @@ public class HtmlBuilder {
         return this;
     }
 
+    /**
+     * Encapsulates the supplied string {@code text} with BOLD style tags
+     */
+    public HtmlBuilder addBold(CharSequence text) {
+        beginBold();
+        add(text);
+        endBold();
+        return this;
+    }
+
+    /**
+     * Encapsulates the supplied slice of {@code text} with BOLD style tags
+     */
+    public HtmlBuilder addBold(char[] text, int offset, int length) {
+        checkRange(text, offset, length);
+        beginBold();
+        add(text, offset, length);
+        endBold();
+        return this;
+    }
+
     /**
      * Adds the html tag "&lt;I&gt;" for ITALIC style
      */
@@ -263,6 +567,27 @@ public class HtmlBuilder {
         return this;
     }
 
+    /**
+     * Encapsulates the supplied string {@code text} with ITALIC style tags
+     */
+    public HtmlBuilder addItalic(CharSequence text) {
+        beginItalic();
+        add(text);
+        endItalic();
+        return this;
+    }
+
+    /**
+     * Encapsulates the supplied slice of {@code text} with ITALIC style tags
+     */
+    public HtmlBuilder addItalic(char[] text, int offset, int length) {
+        checkRange(text, offset, length);
+        beginItalic();
+        add(text, offset, length);
+        endItalic();
+        return this;
+    }
+
     /**
      * Adds the html tag "&lt;div&gt;"
      */
@@ -352,6 +677,37 @@ public class HtmlBuilder {
         return this;
     }
 
+    /**
+     * Same as {@link #addHeading(String, String)} for any {@link CharSequence}.
+     *
+     * @param text      The text to be display as the header
+     * @param fontColor The color for the header text
+     */
+    public HtmlBuilder addHeading(CharSequence text, CharSequence fontColor) {
+        mStringBuilder.append("<font style=\"font-weight:bold; color:").append(fontColor)
+                .append(";\">");
+        add(text);
+        mStringBuilder.append("</font>");
+        return this;
+    }
+
+    /**
+     * Same as {@link #addHeading(String, String)} for a slice of {@code text}.
+     *
+     * @param text      array holding the text to be display as the header
+     * @param offset    index of the first char of the text
+     * @param length    number of chars of the text
+     * @param fontColor The color for the header text
+     */
+    public HtmlBuilder addHeading(char[] text, int offset, int length, CharSequence fontColor) {
+        checkRange(text, offset, length);
+        mStringBuilder.append("<font style=\"font-weight:bold; color:").append(fontColor)
+                .append(";\">");
+        add(text, offset, length);
+        mStringBuilder.append("</font>");
+        return this;
+    }
+
     /**
      * Adds the html tag "&lt;UL&gt;"
      */
@@ -536,23 +892,49 @@ public class HtmlBuilder {
         if (columns == null || columns.length == 0) {
             return this;
         }
-        String tag = "t" + (isHeader ? 'h' : 'd');
+        char tag = isHeader ? 'h' : 'd';
         for (String c : columns) {
-            mStringBuilder.append('<');
-            mStringBuilder.append(tag);
-            if (mTableDataExtra != null) {
-                mStringBuilder.append(' ');
-                mStringBuilder.append(mTableDataExtra);
-            }
-            mStringBuilder.append('>');
+            beginTableCell(tag);
             mStringBuilder.append(c);
-            mStringBuilder.append("</");
-            mStringBuilder.append(tag);
-            mStringBuilder.append('>');
+            endTableCell(tag);
         }
         return this;
     }
 
+    /**
+     * Method adds the {@code column} as "&lt;td&gt;" tag of the table, same as
+     * {@link #addTableCell(boolean, String...)} with a single column but without creating a
+     * varargs array. A null {@code column} is added as "null", like a null column there.
+     *
+     * @param isHeader boolean variable, set true if this cell is a header, false otherwise
+     * @param column   the string to be added as "&lt;td&gt;"
+     */
+    public HtmlBuilder addSingleTableCell(boolean isHeader, CharSequence column) {
+        char tag = isHeader ? 'h' : 'd';
+        beginTableCell(tag);
+        mStringBuilder.append(column);
+        endTableCell(tag);
+        return this;
+    }
+
+    /**
+     * Method adds a slice of {@code column} as "&lt;td&gt;" tag of the table.
+     *
+     * @param isHeader boolean variable, set true if this cell is a header, false otherwise
+     * @param column   array holding the string to be added as "&lt;td&gt;"
+     * @param offset   index of the first char of the string
+     * @param length   number of chars of the string
+     */
+    public HtmlBuilder addSingleTableCell(boolean isHeader, char[] column, int offset,
+                                          int length) {
+        checkRange(column, offset, length);
+        char tag = isHeader ? 'h' : 'd';
+        beginTableCell(tag);
+        mStringBuilder.append(column, offset, length);
+        endTableCell(tag);
+        return this;
+    }
+
     /**
      * Method adds the {@code columns} as "&lt;td&gt;" of the table and encapsulates them with html
      * "&lt;tr&gt;" tag
@@ -573,11 +955,96 @@ public class HtmlBuilder {
     }
 
     /**
-     * Method returns the {@link StringBuilder} instance with all its contents.
+     * Starts keeping a running hash and UTF-8 byte length of the content, for
+     * {@link #getContentHash()} and {@link #getUtf8Length()}. Appending does not digest
+     * anything: the content added since the last digest is read in one pass when
+     * {@link #mark()} or {@link #closeHtml()} is called and on those queries, so without marks
+     * the cost of a pass over the document is paid in {@link #closeHtml()}. Every char is
+     * digested only once, so after {@link #closeHtml()} both are available without reading
+     * the document again.
+     * <p>
+     * The digest only follows content appended to the buffer. Calling
+     * {@link #getStringBuilder()} resets it, as the content may then be edited in place, but
+     * in place edits of a buffer passed to {@link #HtmlBuilder(StringBuilder)} are not
+     * detected; call {@link #getStringBuilder()} after making them.
+     */
+    public HtmlBuilder enableContentDigest() {
+        if (mContentDigest == null) {
+            mContentDigest = new ContentDigest();
+        }
+        return this;
+    }
+
+    /**
+     * Returns a 64-bit non-cryptographic hash of the html, suitable for an ETag. The hash is
+     * the same for the same content and placeholder values, but is not a hash of the bytes of
+     * {@link #getHtml()}. Takes time proportional to the content added since the last digest
+     * and to the size of the placeholder values.
+     *
+     * @return the hash of the html
+     * @throws IllegalStateException if {@link #enableContentDigest()} has not been called
+     */
+    public long getContentHash() {
+        long hash = getContentDigest().getHash();
+        for (int i = 0, n = getPlaceholderCount(); i < n; i++) {
+            hash = ContentDigest.hash(ContentDigest.hash(hash, mPlaceholderOffsets[i]),
+                    getPlaceholderValue(i));
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the number of bytes of {@link #getHtml()} encoded in UTF-8, suitable for a
+     * Content-Length header. Exact for well-formed text, malformed surrogates are counted as
+     * the single replacement byte they are encoded to. Takes time proportional to the content
+     * added since the last digest and to the size of the placeholder values.
+     *
+     * @return the length of the html in UTF-8 bytes
+     * @throws IllegalStateException if {@link #enableContentDigest()} has not been called
+     */
+    public long getUtf8Length() {
+        long length = getContentDigest().getUtf8Length();
+        // the digest counts the buffer as one run of chars, placeholder values are counted in
+        // the order they are written out, carrying over whether the last char written out was
+        // a high surrogate
+        boolean highSurrogate = false;
+        for (int i = 0, n = getPlaceholderCount(); i < n; i++) {
+            int offset = mPlaceholderOffsets[i];
+            boolean bufferHighSurrogate = offset > 0
+                    && Character.isHighSurrogate(mStringBuilder.charAt(offset - 1));
+            if (i == 0 || mPlaceholderOffsets[i - 1] != offset) {
+                highSurrogate = bufferHighSurrogate;
+            }
+            CharSequence value = getPlaceholderValue(i);
+            length += ContentDigest.utf8Length(value, highSurrogate);
+            if (value.length() > 0) {
+                highSurrogate = Character.isHighSurrogate(value.charAt(value.length() - 1));
+            }
+            if ((i == n - 1 || mPlaceholderOffsets[i + 1] != offset)
+                    && offset < mStringBuilder.length()) {
+                // recount the char after the placeholders, which now follows their values
+                char c = mStringBuilder.charAt(offset);
+                length += ContentDigest.utf8Length(c, highSurrogate)
+                        - ContentDigest.utf8Length(c, bufferHighSurrogate);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Method returns the {@link StringBuilder} instance with all its contents. The contents do
+     * not include the values of placeholders, and inserting into or deleting from it moves the
+     * positions of the placeholders added before. Truncating it below a placeholder drops the
+     * placeholder from the html, until content is appended past its position again. As the
+     * contents may be edited in place, the content digest is reset and the next
+     * {@link #getContentHash()} or {@link #getUtf8Length()} digests them from the start.
      *
      * @return {@code mStringBuilder}
      */
     public StringBuilder getStringBuilder() {
+        if (mContentDigest != null) {
+            mContentDigest.reset();
+        }
         return mStringBuilder;
     }
 
@@ -589,16 +1056,207 @@ public class HtmlBuilder {
      * @param textValue the text value to be appended and escaped
      */
     protected void appendXmlTextValue(StringBuilder sb, String textValue) {
-        for (int i = 0, n = textValue.length(); i < n; i++) {
+        appendXmlTextValue(sb, textValue, 0, textValue.length());
+    }
+
+    /**
+     * Appends the chars {@code start} (inclusive) to {@code end} (exclusive) of the text to the
+     * given {@link StringBuilder} and escapes them as required for a DOM text node. Runs of
+     * chars which need no escaping are copied in bulk.
+     *
+     * @param sb        the string builder
+     * @param textValue the text value to be appended and escaped
+     * @param start     index of the first char to be appended
+     * @param end       index after the last char to be appended
+     */
+    protected void appendXmlTextValue(StringBuilder sb, CharSequence textValue, int start,
+                                      int end) {
+        int run = start;
+        for (int i = start; i < end; i++) {
             char c = textValue.charAt(i);
-            if (c == '<') {
-                sb.append(LT_ENTITY);
-            } else if (c == '&') {
-                sb.append(AMP_ENTITY);
-            } else {
-                sb.append(c);
+            if (c == '<' || c == '&') {
+                sb.append(textValue, run, i);
+                sb.append(c == '<' ? LT_ENTITY : AMP_ENTITY);
+                run = i + 1;
+            }
+        }
+        sb.append(textValue, run, end);
+    }
+
+    /**
+     * Same as {@link #appendXmlTextValue(StringBuilder, CharSequence, int, int)} for a char
+     * array.
+     *
+     * @param sb        the string builder
+     * @param textValue array holding the text value to be appended and escaped
+     * @param start     index of the first char to be appended
+     * @param end       index after the last char to be appended
+     */
+    protected void appendXmlTextValue(StringBuilder sb, char[] textValue, int start, int end) {
+        int run = start;
+        for (int i = start; i < end; i++) {
+            char c = textValue[i];
+            if (c == '<' || c == '&') {
+                sb.append(textValue, run, i - run);
+                sb.append(c == '<' ? LT_ENTITY : AMP_ENTITY);
+                run = i + 1;
             }
         }
+        sb.append(textValue, run, end - run);
+    }
+
+    /**
+     * Appends "&lt;A{@code attribute}{@code value}"&gt;" around the trimmed part of the text,
+     * keeping the leading and trailing whitespace of the text outside of the tag.
+     */
+    private void appendAnchor(String attribute, CharSequence value, CharSequence text, int start,
+                              int end) {
+        int begin = start;
+        while (begin < end && Character.isWhitespace(text.charAt(begin))) {
+            begin++;
+        }
+        int last = end;
+        while (last > begin && Character.isWhitespace(text.charAt(last - 1))) {
+            last--;
+        }
+        mStringBuilder.append(text, start, begin);
+        mStringBuilder.append("<A").append(attribute).append(value).append("\">");
+        appendXmlTextValue(mStringBuilder, text, begin, last);
+        mStringBuilder.append("</A>");
+        mStringBuilder.append(text, last, end);
+    }
+
+    /**
+     * Same as {@link #appendAnchor(String, CharSequence, CharSequence, int, int)} for a char
+     * array.
+     */
+    private void appendAnchor(String attribute, CharSequence value, char[] text, int start,
+                              int end) {
+        int begin = start;
+        while (begin < end && Character.isWhitespace(text[begin])) {
+            begin++;
+        }
+        int last = end;
+        while (last > begin && Character.isWhitespace(text[last - 1])) {
+            last--;
+        }
+        mStringBuilder.append(text, start, begin - start);
+        mStringBuilder.append("<A").append(attribute).append(value).append("\">");
+        appendXmlTextValue(mStringBuilder, text, begin, last);
+        mStringBuilder.append("</A>");
+        mStringBuilder.append(text, last, end - last);
+    }
+
+    /**
+     * Returns the content digest, brought up to date with {@code mStringBuilder}.
+     */
+    private ContentDigest getContentDigest() {
+        if (mContentDigest == null) {
+            throw new IllegalStateException("content digest is not enabled");
+        }
+        mContentDigest.update(mStringBuilder);
+        return mContentDigest;
+    }
+
+    /**
+     * Returns {@code mStringBuilder}, without resetting the content digest like
+     * {@link #getStringBuilder()}.
+     */
+    StringBuilder getBuffer() {
+        return mStringBuilder;
+    }
+
+    /**
+     * Returns the number of placeholders added so far, leaving out those past the end of
+     * {@code mStringBuilder} after it has been truncated through {@link #getStringBuilder()}.
+     */
+    int getPlaceholderCount() {
+        int count = mPlaceholderCount;
+        int length = mStringBuilder.length();
+        while (count > 0 && mPlaceholderOffsets[count - 1] > length) {
+            count--;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the offset into {@code mStringBuilder} of the placeholder at {@code index}.
+     */
+    int getPlaceholderOffset(int index) {
+        return mPlaceholderOffsets[index];
+    }
+
+    /**
+     * Returns the index of {@code mark} in the mark stack, searching from the most recent mark.
+     *
+     * @throws IllegalArgumentException if the mark is not on the stack, or the buffer has been
+     *                                  truncated before it
+     */
+    private int indexOfMark(long mark) {
+        int index = mMarkCount - 1;
+        while (index >= 0 && mMarkIds[index] != mark) {
+            index--;
+        }
+        if (index < 0 || mMarkLengths[index] > mStringBuilder.length()) {
+            throw new IllegalArgumentException("mark is no longer valid: " + mark);
+        }
+        return index;
+    }
+
+    /**
+     * Forgets the placeholders past the end of {@code mStringBuilder}, so that the offsets stay
+     * sorted when placeholders are added after it has been truncated.
+     */
+    private void dropPlaceholdersPastEnd() {
+        int count = getPlaceholderCount();
+        for (int i = count; i < mPlaceholderCount; i++) {
+            mPlaceholderNames[i] = null;
+        }
+        mPlaceholderCount = count;
+    }
+
+    /**
+     * Returns the value filled for the placeholder at {@code index}, or an empty string.
+     */
+    CharSequence getPlaceholderValue(int index) {
+        CharSequence value = mPlaceholderValues == null
+                ? null : mPlaceholderValues.get(mPlaceholderNames[index]);
+        return value == null ? "" : value;
+    }
+
+    /**
+     * Adds the opening "&lt;t{@code tag}&gt;" tag of a table cell, with the tdExtra of the table.
+     */
+    private void beginTableCell(char tag) {
+        mStringBuilder.append("<t");
+        mStringBuilder.append(tag);
+        if (mTableDataExtra != null) {
+            mStringBuilder.append(' ');
+            mStringBuilder.append(mTableDataExtra);
+        }
+        mStringBuilder.append('>');
+    }
+
+    /**
+     * Adds the closing "&lt;/t{@code tag}&gt;" tag of a table cell.
+     */
+    private void endTableCell(char tag) {
+        mStringBuilder.append("</t");
+        mStringBuilder.append(tag);
+        mStringBuilder.append('>');
+    }
+
+    /**
+     * Checks that {@code offset} and {@code length} describe a valid slice of {@code chars}, so
+     * that nothing is appended for an invalid slice.
+     *
+     * @throws IndexOutOfBoundsException if the slice is out of the bounds of the array
+     */
+    private static void checkRange(char[] chars, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > chars.length - length) {
+            throw new IndexOutOfBoundsException("offset " + offset + ", length " + length
+                    + ", array length " + chars.length);
+        }
     }
 
     /**
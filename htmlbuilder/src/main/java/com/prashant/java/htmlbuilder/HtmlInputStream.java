@@ -0,0 +1,111 @@
+package com.prashant.java.htmlbuilder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * {@link InputStream} which encodes the chars of a {@link Reader} in fixed size chunks, so
+ * that neither the whole text nor its whole encoded form is held in memory.
+ * <p>
+ * Calls to {@link Buffer#flip()}, {@link Buffer#clear()} and {@link Buffer#position(int)} go
+ * through {@link Buffer}, as JDK 9+ compilers otherwise bind them to the covariant overrides of
+ * {@link CharBuffer} and {@link ByteBuffer}, which do not exist on Java 7/8 and older Android.
+ */
+final class HtmlInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader mReader;
+    private final CharsetEncoder mEncoder;
+    /** Chars read from {@code mReader} and not encoded yet, in read mode. */
+    private final CharBuffer mChars;
+    /** Bytes encoded and not returned yet, in read mode. */
+    private final ByteBuffer mBytes;
+    private boolean mEndOfInput;
+    private boolean mEncoded;
+    private boolean mFlushed;
+
+    HtmlInputStream(Reader reader, Charset charset) {
+        mReader = reader;
+        mEncoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        mChars = CharBuffer.allocate(BUFFER_SIZE);
+        ((Buffer) mChars).flip();
+        mBytes = ByteBuffer.allocate(BUFFER_SIZE);
+        ((Buffer) mBytes).flip();
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!mBytes.hasRemaining() && !fill()) {
+            return -1;
+        }
+        return mBytes.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > b.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (!mBytes.hasRemaining() && !fill()) {
+            return -1;
+        }
+        int n = Math.min(len, mBytes.remaining());
+        mBytes.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return mBytes.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mReader.close();
+    }
+
+    /**
+     * Encodes the next chunk into {@code mBytes}.
+     *
+     * @return false if all bytes have already been returned
+     */
+    private boolean fill() throws IOException {
+        ((Buffer) mBytes).clear();
+        while (mBytes.position() == 0 && !mFlushed) {
+            if (!mEncoded) {
+                if (!mEndOfInput) {
+                    mChars.compact();
+                    int n = mReader.read(mChars.array(), mChars.position(), mChars.remaining());
+                    if (n < 0) {
+                        mEndOfInput = true;
+                    } else {
+                        ((Buffer) mChars).position(mChars.position() + n);
+                    }
+                    ((Buffer) mChars).flip();
+                }
+                CoderResult result = mEncoder.encode(mChars, mBytes, mEndOfInput);
+                if (mEndOfInput && result.isUnderflow()) {
+                    mEncoded = true;
+                }
+            } else if (mEncoder.flush(mBytes).isUnderflow()) {
+                mFlushed = true;
+            }
+        }
+        ((Buffer) mBytes).flip();
+        return mBytes.hasRemaining();
+    }
+}
@@ -0,0 +1,112 @@
+package com.prashant.java.htmlbuilder;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * {@link Reader} over the html of a {@link HtmlBuilder}. Reads the content of the builder as
+ * a sequence of segments: the parts of the buffer between the placeholders, and the values of
+ * the placeholders.
+ */
+final class HtmlReader extends Reader {
+
+    private final HtmlBuilder mBuilder;
+    /**
+     * Index of the current segment. Even indexes are parts of the buffer, odd indexes are the
+     * values of the placeholders.
+     */
+    private int mSegment = -1;
+    private CharSequence mSegmentChars;
+    private int mSegmentPosition;
+    private int mSegmentEnd;
+    private boolean mClosed;
+
+    HtmlReader(HtmlBuilder builder) {
+        mBuilder = builder;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off > cbuf.length - len) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (mClosed) {
+            throw new IOException("Reader is closed");
+        }
+        if (len == 0) {
+            return 0;
+        }
+        int count = 0;
+        while (count < len) {
+            if (mSegmentPosition == mSegmentEnd && !nextSegment()) {
+                break;
+            }
+            int n = Math.min(len - count, mSegmentEnd - mSegmentPosition);
+            copy(mSegmentChars, mSegmentPosition, mSegmentPosition + n, cbuf, off + count);
+            mSegmentPosition += n;
+            count += n;
+        }
+        return count == 0 ? -1 : count;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (mClosed) {
+            throw new IOException("Reader is closed");
+        }
+        while (mSegmentPosition == mSegmentEnd) {
+            if (!nextSegment()) {
+                return -1;
+            }
+        }
+        return mSegmentChars.charAt(mSegmentPosition++);
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    /**
+     * Moves to the next segment, which may be empty.
+     *
+     * @return false if there are no more segments
+     */
+    private boolean nextSegment() {
+        int placeholderCount = mBuilder.getPlaceholderCount();
+        if (mSegment >= placeholderCount * 2) {
+            return false;
+        }
+        mSegment++;
+        if (mSegment % 2 == 1) {
+            mSegmentChars = mBuilder.getPlaceholderValue(mSegment / 2);
+            mSegmentPosition = 0;
+            mSegmentEnd = mSegmentChars.length();
+        } else {
+            int index = mSegment / 2;
+            mSegmentChars = mBuilder.getBuffer();
+            mSegmentPosition = index == 0 ? 0 : mBuilder.getPlaceholderOffset(index - 1);
+            mSegmentEnd = index == placeholderCount
+                    ? mSegmentChars.length() : mBuilder.getPlaceholderOffset(index);
+        }
+        return true;
+    }
+
+    /**
+     * Copies the chars {@code start} (inclusive) to {@code end} (exclusive) of {@code chars}
+     * into {@code dst}, in bulk when the type of {@code chars} allows it.
+     */
+    private static void copy(CharSequence chars, int start, int end, char[] dst, int dstBegin) {
+        if (chars instanceof String) {
+            ((String) chars).getChars(start, end, dst, dstBegin);
+        } else if (chars instanceof StringBuilder) {
+            ((StringBuilder) chars).getChars(start, end, dst, dstBegin);
+        } else if (chars instanceof StringBuffer) {
+            ((StringBuffer) chars).getChars(start, end, dst, dstBegin);
+        } else {
+            for (int i = start; i < end; i++) {
+                dst[dstBegin++] = chars.charAt(i);
+            }
+        }
+    }
+}
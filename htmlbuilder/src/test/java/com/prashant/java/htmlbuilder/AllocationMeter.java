@@ -0,0 +1,57 @@
+package com.prashant.java.htmlbuilder;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Measures the heap bytes allocated by the current thread, using
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}.
+ */
+final class AllocationMeter {
+
+    private static final int WARMUP_ITERATIONS = 20000;
+    private static final int MEASURED_ITERATIONS = 10000;
+
+    private final com.sun.management.ThreadMXBean mThreadMXBean;
+
+    AllocationMeter() {
+        mThreadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        mThreadMXBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Runs {@code operation} until warmed up and returns the average number of bytes it
+     * allocated per run, rounded up, so that 0 means no allocation at all.
+     *
+     * @param operation the operation to be measured
+     * @return bytes allocated per run of {@code operation}
+     */
+    long bytesPerRun(Runnable operation) {
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            operation.run();
+        }
+        long bytes = bytesOf(operation, MEASURED_ITERATIONS);
+        return (bytes + MEASURED_ITERATIONS - 1) / MEASURED_ITERATIONS;
+    }
+
+    /**
+     * Runs {@code operation} once, without warming up, and returns the number of bytes it
+     * allocated.
+     *
+     * @param operation the operation to be measured
+     * @return bytes allocated by {@code operation}
+     */
+    long bytesOf(Runnable operation) {
+        return bytesOf(operation, 1);
+    }
+
+    private long bytesOf(Runnable operation, int iterations) {
+        long threadId = Thread.currentThread().getId();
+        // the first reading may allocate while the bean initializes itself
+        mThreadMXBean.getThreadAllocatedBytes(threadId);
+        long before = mThreadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        return mThreadMXBean.getThreadAllocatedBytes(threadId) - before;
+    }
+}
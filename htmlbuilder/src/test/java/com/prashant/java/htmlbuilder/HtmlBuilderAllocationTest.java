@@ -0,0 +1,500 @@
+package com.prashant.java.htmlbuilder;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Allocation budgets for the public apis of {@link HtmlBuilder}. Each api is run after warming
+ * up and fails if it allocates more heap bytes per call than its budget, as counted by
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long)}. The builder is
+ * rolled back to empty before each call, so growing its buffer is not counted. The varargs
+ * apis are measured both with a prebuilt array and with the array a call site allocates.
+ * <p>
+ * Budgets are exact for apis which must not allocate. Apis which have to create objects get
+ * some headroom over what they allocate today, to allow for differences between JVMs.
+ */
+@RunWith(Parameterized.class)
+public class HtmlBuilderAllocationTest {
+
+    private static final String TEXT = " Hello <World> & friends ";
+    private static final char[] CHARS = TEXT.toCharArray();
+    private static final String URL = "https://www.stackoverflow.com";
+    private static final String IMAGE_URL = "https://dummy-url.jpg";
+    private static final String METHOD = "alert('I am alert');";
+    private static final String[] COLUMNS = {"row 1", "row 2", "row 3", "row 4"};
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final String mName;
+    private final long mBudget;
+    private final Operation mOperation;
+
+    public HtmlBuilderAllocationTest(String name, long budget, Operation operation) {
+        mName = name;
+        mBudget = budget;
+        mOperation = operation;
+    }
+
+    @Parameters(name = "{0}")
+    public static Collection<Object[]> budgets() {
+        return Arrays.asList(
+                budget("openHtml", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.openHtml();
+                    }
+                }),
+                budget("openBody", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.openBody();
+                    }
+                }),
+                budget("openHead", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.openHead();
+                    }
+                }),
+                budget("closeHead", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.closeHead();
+                    }
+                }),
+                budget("closeHtml", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.closeHtml();
+                    }
+                }),
+                budget("closeBody", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.closeBody();
+                    }
+                }),
+                budget("addHtml", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addHtml(TEXT);
+                    }
+                }),
+                budget("addHtml(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addHtml(CHARS, 0, CHARS.length);
+                    }
+                }),
+                budget("addNbsp", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addNbsp();
+                    }
+                }),
+                budget("addNbsps", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addNbsps(14);
+                    }
+                }),
+                budget("newline", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.newline();
+                    }
+                }),
+                budget("newlineIfNecessary", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.newlineIfNecessary().newlineIfNecessary();
+                    }
+                }),
+                budget("addLink", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addLink(TEXT, URL);
+                    }
+                }),
+                budget("addLink(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addLink(CHARS, 0, CHARS.length, URL);
+                    }
+                }),
+                budget("addOnClick", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addOnClick(TEXT, METHOD);
+                    }
+                }),
+                budget("addOnClick(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addOnClick(CHARS, 0, CHARS.length, METHOD);
+                    }
+                }),
+                budget("add", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.add(TEXT);
+                    }
+                }),
+                budget("add(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.add(CHARS, 0, CHARS.length);
+                    }
+                }),
+                budget("getHtml", 128, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.add(TEXT).getHtml();
+                    }
+                }),
+                budget("getHtml with placeholder", 384, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.placeholder("title").add(TEXT).fill("title", TEXT).getHtml();
+                    }
+                }),
+                budget("writeTo", 0, new Operation() {
+                    private final StringBuilder mOut = new StringBuilder(256);
+
+                    @Override
+                    void run(HtmlBuilder builder) throws Exception {
+                        mOut.setLength(0);
+                        builder.placeholder("title").add(TEXT).fill("title", TEXT).writeTo(mOut);
+                    }
+                }),
+                budget("asReader", 128, new Operation() {
+                    private final char[] mBuffer = new char[256];
+
+                    @Override
+                    void run(HtmlBuilder builder) throws Exception {
+                        Reader reader = builder.add(TEXT).asReader();
+                        while (reader.read(mBuffer) != -1) {
+                            // discard
+                        }
+                    }
+                }),
+                budget("asInputStream", 32768, new Operation() {
+                    private final byte[] mBuffer = new byte[256];
+
+                    @Override
+                    void run(HtmlBuilder builder) throws Exception {
+                        InputStream in = builder.add(TEXT).asInputStream(UTF_8);
+                        while (in.read(mBuffer) != -1) {
+                            // discard
+                        }
+                    }
+                }),
+                budget("placeholder", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.placeholder("title");
+                    }
+                }),
+                budget("fill", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.fill("title", TEXT);
+                    }
+                }),
+                budget("mark and rollbackTo", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        long mark = builder.mark();
+                        builder.add(TEXT).rollbackTo(mark);
+                    }
+                }),
+                budget("mark and release", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        long mark = builder.mark();
+                        builder.add(TEXT).release(mark);
+                    }
+                }),
+                budget("closeHtml with content digest", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.enableContentDigest().add(TEXT).closeHtml();
+                    }
+                }),
+                budget("getContentHash", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.enableContentDigest().add(TEXT).getContentHash();
+                    }
+                }),
+                budget("getUtf8Length", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.enableContentDigest().add(TEXT).getUtf8Length();
+                    }
+                }),
+                budget("beginBold", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginBold();
+                    }
+                }),
+                budget("endBold", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endBold();
+                    }
+                }),
+                budget("addBold", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addBold(TEXT);
+                    }
+                }),
+                budget("addBold(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addBold(CHARS, 0, CHARS.length);
+                    }
+                }),
+                budget("beginItalic", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginItalic();
+                    }
+                }),
+                budget("endItalic", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endItalic();
+                    }
+                }),
+                budget("addItalic", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addItalic(TEXT);
+                    }
+                }),
+                budget("addItalic(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addItalic(CHARS, 0, CHARS.length);
+                    }
+                }),
+                budget("beginDiv", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginDiv();
+                    }
+                }),
+                budget("beginDivWithClass", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginDivWithClass("header");
+                    }
+                }),
+                budget("beginDivWithClassAndStyle", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginDivWithClassAndStyle("header", "color : red");
+                    }
+                }),
+                budget("beginDivWithStyle", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginDivWithStyle("color : red");
+                    }
+                }),
+                budget("endDiv", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endDiv();
+                    }
+                }),
+                budget("addHeading", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addHeading(TEXT, "#AAD");
+                    }
+                }),
+                budget("addHeading(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addHeading(CHARS, 0, CHARS.length, "#AAD");
+                    }
+                }),
+                budget("beginUnOrderedList", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginUnOrderedList();
+                    }
+                }),
+                budget("endUnOrderedList", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endUnOrderedList();
+                    }
+                }),
+                budget("beginOrderedList", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginOrderedList();
+                    }
+                }),
+                budget("endOrderedList", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endOrderedList();
+                    }
+                }),
+                budget("listItem", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.listItem();
+                    }
+                }),
+                budget("addImage", 2048, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addImage(IMAGE_URL, "suckerr");
+                    }
+                }),
+                budget("addImage with onclick", 2048, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addImage(IMAGE_URL, "suckerr", METHOD);
+                    }
+                }),
+                budget("addIcon", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addIcon(IMAGE_URL);
+                    }
+                }),
+                budget("beginTable", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginTable();
+                    }
+                }),
+                budget("beginTable(tdExtra)", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginTable("style=\"border: 1px solid black;\"");
+                    }
+                }),
+                budget("endTable", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endTable();
+                    }
+                }),
+                budget("beginTableRow", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginTableRow();
+                    }
+                }),
+                budget("endTableRow", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.endTableRow();
+                    }
+                }),
+                budget("addTableRow", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addTableRow(COLUMNS);
+                    }
+                }),
+                budget("addTableRow(isHeader)", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.beginTable("style=\"border: 1px solid black;\"")
+                                .addTableRow(true, COLUMNS);
+                    }
+                }),
+                budget("addTableRow with inline varargs", 64, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addTableRow("row 1", "row 2", "row 3", "row 4");
+                    }
+                }),
+                budget("addTableCell", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addTableCell(COLUMNS);
+                    }
+                }),
+                budget("addTableCell(isHeader)", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addTableCell(true, COLUMNS);
+                    }
+                }),
+                budget("addTableCell with inline varargs", 64, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addTableCell(true, "row 1", "row 2", "row 3", "row 4");
+                    }
+                }),
+                budget("addSingleTableCell", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addSingleTableCell(true, TEXT);
+                    }
+                }),
+                budget("addSingleTableCell(char[])", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.addSingleTableCell(true, CHARS, 0, CHARS.length);
+                    }
+                }),
+                budget("getStringBuilder", 0, new Operation() {
+                    @Override
+                    void run(HtmlBuilder builder) {
+                        builder.getStringBuilder();
+                    }
+                })
+        );
+    }
+
+    @Test
+    public void staysWithinBudget() throws Exception {
+        final HtmlBuilder builder = new HtmlBuilder(new StringBuilder(4096));
+        final long empty = builder.mark();
+        long allocated = new AllocationMeter().bytesPerRun(new Runnable() {
+            @Override
+            public void run() {
+                builder.rollbackTo(empty);
+                try {
+                    mOperation.run(builder);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        assertTrue(mName + " allocated " + allocated + " bytes per call, budget is " + mBudget,
+                allocated <= mBudget);
+    }
+
+    private static Object[] budget(String name, long bytes, Operation operation) {
+        return new Object[]{name, bytes, operation};
+    }
+
+    /**
+     * A call to the api under test.
+     */
+    abstract static class Operation {
+        abstract void run(HtmlBuilder builder) throws Exception;
+    }
+}
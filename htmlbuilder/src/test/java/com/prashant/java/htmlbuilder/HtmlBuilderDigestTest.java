@@ -0,0 +1,127 @@
+package com.prashant.java.htmlbuilder;
+
+import org.junit.Test;
+
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests for the content hash and UTF-8 length of {@link HtmlBuilder}.
+ */
+public class HtmlBuilderDigestTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void getUtf8Length_matchesEncodedHtml() throws Exception {
+        HtmlBuilder builder = page("\u00e9t\u00e9 \u20ac \ud83d\ude00 < &",
+                "<title>\ud83d\ude00</title>");
+        assertEquals(builder.getHtml().getBytes(UTF_8).length, builder.getUtf8Length());
+    }
+
+    @Test
+    public void getUtf8Length_countsMalformedSurrogatesAsReplacement() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().enableContentDigest()
+                .add("a\ud83db\ude00c\ud83d").closeHtml();
+        assertEquals(builder.getHtml().getBytes(UTF_8).length, builder.getUtf8Length());
+    }
+
+    @Test
+    public void getUtf8Length_followsIncrementalUpdates() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().enableContentDigest().add("\ud83d");
+        builder.getUtf8Length();
+        builder.add("\ude00 \u00e9");
+        assertEquals(builder.getHtml().getBytes(UTF_8).length, builder.getUtf8Length());
+    }
+
+    @Test
+    public void getContentHash_isSameForSameContent() throws Exception {
+        assertEquals(page("a", "b").getContentHash(), page("a", "b").getContentHash());
+        assertNotEquals(page("a", "b").getContentHash(), page("c", "b").getContentHash());
+        assertNotEquals(page("a", "b").getContentHash(), page("a", "c").getContentHash());
+    }
+
+    @Test
+    public void getContentHash_followsInPlaceEdits() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().enableContentDigest().add("hello");
+        long hash = builder.getContentHash();
+        StringBuilder buffer = builder.getStringBuilder();
+        buffer.insert(0, 'X').setLength(5);
+
+        assertNotEquals(hash, builder.getContentHash());
+        assertEquals(new HtmlBuilder().enableContentDigest().add("Xhell").getContentHash(),
+                builder.getContentHash());
+    }
+
+    @Test
+    public void getContentHash_followsEditsOfSuppliedBufferAfterGetStringBuilder()
+            throws Exception {
+        StringBuilder buffer = new StringBuilder();
+        HtmlBuilder builder = new HtmlBuilder(buffer).enableContentDigest().add("hello");
+        builder.getContentHash();
+        buffer.setCharAt(0, 'j');
+        builder.getStringBuilder();
+
+        HtmlBuilder expected = new HtmlBuilder().enableContentDigest().add("jello");
+        assertEquals(expected.getContentHash(), builder.getContentHash());
+        assertEquals(expected.getUtf8Length(), builder.getUtf8Length());
+    }
+
+    @Test
+    public void getUtf8Length_countsSurrogatePairsSplitByPlaceholders() throws Exception {
+        HtmlBuilder[] builders = {
+                new HtmlBuilder().add("x\ud83d").placeholder("p").fill("p", "\ude00"),
+                new HtmlBuilder().placeholder("p").add("\ude00x").fill("p", "x\ud83d"),
+                new HtmlBuilder().add("\ud83d").placeholder("p").placeholder("q").add("\ude00")
+                        .fill("q", "\ud83d"),
+                new HtmlBuilder().add("\ud83d").placeholder("p").add("\ude00")
+                        .fill("p", "\ude00\ud83d"),
+                new HtmlBuilder().add("\ud83d").placeholder("p").add("\ude00").fill("p", "a"),
+        };
+        for (HtmlBuilder builder : builders) {
+            builder.enableContentDigest().closeHtml();
+            assertEquals(builder.getHtml(), builder.getHtml().getBytes(UTF_8).length,
+                    builder.getUtf8Length());
+        }
+    }
+
+    @Test
+    public void rollbackTo_restoresDigest() throws Exception {
+        HtmlBuilder expected = new HtmlBuilder().enableContentDigest().add("a").add("c");
+        HtmlBuilder builder = new HtmlBuilder().enableContentDigest().add("a");
+        long mark = builder.mark();
+        builder.add("b\u20ac").getContentHash();
+        builder.rollbackTo(mark).add("c");
+
+        assertEquals(expected.getContentHash(), builder.getContentHash());
+        assertEquals(expected.getUtf8Length(), builder.getUtf8Length());
+    }
+
+    @Test
+    public void rollbackTo_beforeOlderMarkRedigests() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().enableContentDigest().add("a");
+        long first = builder.mark();
+        builder.add("b");
+        builder.mark();
+        builder.add("c\u20ac").getContentHash();
+        builder.rollbackTo(first).add("d");
+
+        HtmlBuilder expected = new HtmlBuilder().enableContentDigest().add("ad");
+        assertEquals(expected.getContentHash(), builder.getContentHash());
+        assertEquals(2, builder.getUtf8Length());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void getContentHash_requiresDigest() throws Exception {
+        new HtmlBuilder().getContentHash();
+    }
+
+    private static HtmlBuilder page(String text, String title) {
+        return new HtmlBuilder().enableContentDigest()
+                .openHtml().openHead().placeholder("title").closeHead()
+                .openBody().add(text).closeBody().closeHtml()
+                .fill("title", title);
+    }
+}
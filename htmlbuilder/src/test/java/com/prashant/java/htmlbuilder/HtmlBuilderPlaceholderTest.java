@@ -0,0 +1,149 @@
+package com.prashant.java.htmlbuilder;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the placeholder and mark/rollback apis of {@link HtmlBuilder}.
+ */
+public class HtmlBuilderPlaceholderTest {
+
+    @Test
+    public void placeholder_isResolvedOnWriteOut() throws Exception {
+        StringBuilder count = new StringBuilder();
+        HtmlBuilder builder = new HtmlBuilder()
+                .openHead().placeholder("title").closeHead()
+                .openBody().placeholder("title").add("items: ").placeholder("count")
+                .closeBody()
+                .fill("title", "<title>T</title>")
+                .fill("count", count);
+        count.append(3);
+
+        String expected = "<head><title>T</title></head><body><title>T</title>items: 3</body>";
+        assertEquals(expected, builder.getHtml());
+        StringWriter writer = new StringWriter();
+        builder.writeTo(writer);
+        assertEquals(expected, writer.toString());
+        assertEquals("<head></head><body>items: </body>", builder.getStringBuilder().toString());
+    }
+
+    @Test
+    public void placeholder_unfilledResolvesToNothing() throws Exception {
+        assertEquals("ab", new HtmlBuilder().add("a").placeholder("x").add("b").getHtml());
+    }
+
+    @Test
+    public void fill_replacesPreviousValue() throws Exception {
+        assertEquals("2", new HtmlBuilder().placeholder("x").fill("x", "1").fill("x", "2")
+                .getHtml());
+    }
+
+    @Test
+    public void rollbackTo_discardsContentAndPlaceholders() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().add("a").placeholder("x");
+        long mark = builder.mark();
+        builder.add("b").placeholder("y").add("c");
+        builder.rollbackTo(mark).add("d").fill("x", "X").fill("y", "Y");
+
+        assertEquals("aXd", builder.getHtml());
+    }
+
+    @Test
+    public void placeholder_pastTruncatedBufferIsDropped() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().add("abc").placeholder("x").fill("x", "X");
+        builder.getStringBuilder().setLength(0);
+        assertEquals("", builder.getHtml());
+
+        builder.add("d").placeholder("y").add("e").fill("y", "Y");
+        assertEquals("dYe", builder.getHtml());
+        assertEquals("dYe", readAll(builder.asReader()));
+    }
+
+    @Test
+    public void rollbackTo_sameMarkTwice() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().add("a");
+        long mark = builder.mark();
+        builder.add("b").rollbackTo(mark).add("c").rollbackTo(mark).add("d");
+        assertEquals("ad", builder.getHtml());
+    }
+
+    @Test
+    public void rollbackTo_restoresTableDataExtra() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder();
+        long mark = builder.mark();
+        builder.beginTable("style=\"x\"").addTableRow("discarded");
+        builder.rollbackTo(mark).addTableCell("a");
+        assertEquals("<td>a</td>", builder.getHtml());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rollbackTo_rejectsMarkDiscardedByEarlierRollback() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().add("a");
+        long first = builder.mark();
+        builder.add("bcdef");
+        long second = builder.mark();
+        builder.rollbackTo(first).add("zzzzzzzz").rollbackTo(second);
+    }
+
+    @Test
+    public void release_keepsContentAndDiscardsLaterMarks() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().add("a");
+        long outer = builder.mark();
+        builder.add("b");
+        long inner = builder.mark();
+        builder.add("c").release(outer);
+        assertEquals("abc", builder.getHtml());
+
+        for (long mark : new long[]{outer, inner}) {
+            try {
+                builder.rollbackTo(mark);
+                fail("released mark accepted");
+            } catch (IllegalArgumentException expected) {
+                // pass
+            }
+        }
+    }
+
+    @Test
+    public void release_keptMarksDoNotGrowState() throws Exception {
+        final HtmlBuilder builder = new HtmlBuilder(new StringBuilder(1 << 20));
+        Runnable rows = new Runnable() {
+            @Override
+            public void run() {
+                builder.getBuffer().setLength(0);
+                for (int i = 0; i < 100000; i++) {
+                    long mark = builder.mark();
+                    builder.add("kept");
+                    builder.release(mark);
+                }
+            }
+        };
+        rows.run();
+        // a mark stack growing with the kept rows would allocate while they are added
+        assertEquals(0, new AllocationMeter().bytesOf(rows));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rollbackTo_rejectsStaleMark() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder().add("a");
+        long start = builder.mark();
+        builder.add("b");
+        long later = builder.mark();
+        builder.rollbackTo(start).rollbackTo(later);
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringWriter writer = new StringWriter();
+        char[] buffer = new char[16];
+        for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+            writer.write(buffer, 0, n);
+        }
+        return writer.toString();
+    }
+}
@@ -0,0 +1,108 @@
+package com.prashant.java.htmlbuilder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for the {@link Reader} and {@link InputStream} views of {@link HtmlBuilder}.
+ */
+public class HtmlBuilderStreamTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void asReader_readsHtmlWithPlaceholders() throws Exception {
+        HtmlBuilder builder = largePage(2000);
+        assertEquals(builder.getHtml(), readAll(builder.asReader()));
+    }
+
+    @Test
+    public void asReader_readsEmptyBuilder() throws Exception {
+        assertEquals(-1, new HtmlBuilder().asReader().read());
+        assertEquals(-1, new HtmlBuilder().placeholder("x").asReader().read(new char[4]));
+    }
+
+    @Test
+    public void asInputStream_encodesHtml() throws Exception {
+        HtmlBuilder builder = largePage(2000);
+        for (String name : new String[]{"UTF-8", "UTF-16", "ISO-8859-1"}) {
+            Charset charset = Charset.forName(name);
+            assertArrayEquals(name, builder.getHtml().getBytes(charset),
+                    readAll(builder.asInputStream(charset)));
+        }
+    }
+
+    @Test
+    public void asInputStream_readsByteByByte() throws Exception {
+        HtmlBuilder builder = largePage(10);
+        InputStream in = builder.asInputStream(UTF_8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int b = in.read(); b != -1; b = in.read()) {
+            out.write(b);
+        }
+        assertArrayEquals(builder.getHtml().getBytes(UTF_8), out.toByteArray());
+    }
+
+    @Test
+    public void asInputStream_allocatesFarLessThanHtml() throws Exception {
+        final HtmlBuilder builder = largePage(20000);
+        final byte[] buffer = new byte[8192];
+        int htmlLength = builder.getStringBuilder().length();
+        assertTrue(htmlLength > 500000);
+
+        long allocated = new AllocationMeter().bytesOf(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    InputStream in = builder.asInputStream(UTF_8);
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                } catch (IOException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        // getHtml() alone would need at least one byte per char, before encoding
+        assertTrue("allocated " + allocated, allocated < htmlLength / 10);
+    }
+
+    private static HtmlBuilder largePage(int rows) {
+        HtmlBuilder builder = new HtmlBuilder()
+                .openHtml().openHead().placeholder("title").closeHead().openBody()
+                .beginTable();
+        for (int i = 0; i < rows; i++) {
+            builder.addTableRow("row " + i, "\u00e9t\u00e9 \u20ac", "\ud83d\ude00 < &");
+        }
+        return builder.endTable().placeholder("footer").closeBody().closeHtml()
+                .fill("title", "<title>" + rows + " rows \ud83d\ude00</title>");
+    }
+
+    private static String readAll(Reader reader) throws IOException {
+        StringWriter writer = new StringWriter();
+        char[] buffer = new char[1000];
+        for (int n = reader.read(buffer); n != -1; n = reader.read(buffer)) {
+            writer.write(buffer, 0, n);
+        }
+        return writer.toString();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        for (int n = in.read(buffer); n != -1; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
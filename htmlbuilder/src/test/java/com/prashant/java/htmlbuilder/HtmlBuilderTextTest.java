@@ -0,0 +1,109 @@
+package com.prashant.java.htmlbuilder;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for the text taking apis of {@link HtmlBuilder}.
+ */
+public class HtmlBuilderTextTest {
+
+    @Test
+    public void add_escapesText() throws Exception {
+        assertEquals("a &lt;b> &amp;&amp; c", new HtmlBuilder().add("a <b> && c").getHtml());
+    }
+
+    @Test
+    public void add_acceptsCharSequenceAndSlices() throws Exception {
+        char[] chars = "xx1 < 2yy".toCharArray();
+        String expected = new HtmlBuilder().add("1 < 2").getHtml();
+
+        assertEquals(expected, new HtmlBuilder().add(new StringBuilder("1 < 2")).getHtml());
+        assertEquals(expected, new HtmlBuilder().add(CharBuffer.wrap("1 < 2")).getHtml());
+        assertEquals(expected, new HtmlBuilder().add(chars, 2, 5).getHtml());
+        assertEquals("<B>1 &lt; 2</B>", new HtmlBuilder().addBold(chars, 2, 5).getHtml());
+        assertEquals("<I>1 &lt; 2</I>", new HtmlBuilder().addItalic(chars, 2, 5).getHtml());
+        assertEquals("1 < 2", new HtmlBuilder().addHtml(chars, 2, 5).getHtml());
+    }
+
+    @Test
+    public void addLink_keepsSurroundingWhitespaceOutsideTag() throws Exception {
+        assertEquals(" \t<A HREF=\"u\">a &amp; b</A> \n",
+                new HtmlBuilder().addLink(" \ta & b \n", "u").getHtml());
+        assertEquals(" <A onclick=\"m()\">x</A>  ",
+                new HtmlBuilder().addOnClick(" x  ", "m()").getHtml());
+        assertEquals("   <A HREF=\"u\"></A>", new HtmlBuilder().addLink("   ", "u").getHtml());
+    }
+
+    @Test
+    public void addLink_acceptsSlices() throws Exception {
+        char[] chars = "-- link --".toCharArray();
+        assertEquals(" <A HREF=\"u\">link</A> ",
+                new HtmlBuilder().addLink(chars, 2, 6, "u").getHtml());
+        assertEquals(" <A onclick=\"m()\">link</A> ",
+                new HtmlBuilder().addOnClick(chars, 2, 6, "m()").getHtml());
+    }
+
+    @Test
+    public void add_stringGoesThroughOverridableHook() throws Exception {
+        HtmlBuilder builder = new HtmlBuilder() {
+            @Override
+            protected void appendXmlTextValue(StringBuilder sb, String textValue) {
+                sb.append(textValue.toUpperCase());
+            }
+        };
+        assertEquals("A<B>B</B><I>C</I>", builder.add("a").addBold("b").addItalic("c").getHtml());
+    }
+
+    @Test
+    public void addSingleTableCell_acceptsCharSequenceAndSlices() throws Exception {
+        char[] chars = "xxcellyy".toCharArray();
+        String expected = new HtmlBuilder().beginTable("a=1").addTableCell(true, "cell")
+                .getHtml();
+
+        assertEquals("<table><th a=1>cell</th>", expected);
+        assertEquals(expected, new HtmlBuilder().beginTable("a=1")
+                .addSingleTableCell(true, new StringBuilder("cell")).getHtml());
+        assertEquals(expected, new HtmlBuilder().beginTable("a=1")
+                .addSingleTableCell(true, chars, 2, 4).getHtml());
+    }
+
+    @Test
+    public void addTableCell_keepsNullBehaviour() throws Exception {
+        String column = null;
+        assertEquals("<th>null</th>", new HtmlBuilder().addTableCell(true, column).getHtml());
+        assertEquals("", new HtmlBuilder().addTableCell(false, null).getHtml());
+        assertEquals("<th>null</th>",
+                new HtmlBuilder().addSingleTableCell(true, column).getHtml());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void add_rejectsInvalidSlice() throws Exception {
+        new HtmlBuilder().add(new char[4], 2, 3);
+    }
+
+    @Test
+    public void textPaths_doNotAllocate() throws Exception {
+        final HtmlBuilder builder = new HtmlBuilder(new StringBuilder(256));
+        final StringBuilder text = new StringBuilder(" a < b & c ");
+        final char[] chars = " a < b & c ".toCharArray();
+        AllocationMeter meter = new AllocationMeter();
+
+        assertEquals(0, meter.bytesPerRun(new Runnable() {
+            @Override
+            public void run() {
+                builder.getStringBuilder().setLength(0);
+                builder.add(text).add(chars, 0, chars.length)
+                        .addBold(text).addItalic(chars, 0, chars.length)
+                        .addHeading(text, "#AAD")
+                        .addLink(text, "https://www.stackoverflow.com")
+                        .addLink(chars, 0, chars.length, "https://www.stackoverflow.com")
+                        .addOnClick(text, "alert('I am alert');")
+                        .addOnClick(chars, 0, chars.length, "alert('I am alert');");
+            }
+        }));
+    }
+}